@@ -0,0 +1,275 @@
+package primerange;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ A process-wide cache of sieved primes shared by all threads. The non-negative int range is
+ split in segments of SEGMENT_SIZE numbers, each sieved on first use into an off-heap bitmap
+ (one bit per odd number) and published with a CAS. Readers never lock: a thread that finds
+ a segment being sieved by another thread answers the query with isPrimeV2 instead of waiting
+ or sieving it a second time. The memory held by the bitmaps is capped, the least recently
+ used segments being evicted to make room for new ones. The ceiling is a soft one: it bounds
+ the bytes reserved by the published segments, while an evicted bitmap stays allocated until
+ the garbage collector frees its direct buffer, so under eviction churn the off-heap memory
+ actually in use can exceed maxBytes.
+ */
+public class PrimeCache {
+
+    /** numbers covered by a segment */
+    public static final int SEGMENT_SIZE = 1 << 20;
+
+    /** off-heap bytes held by a segment - one bit per odd number */
+    public static final int SEGMENT_BYTES = SEGMENT_SIZE / 16;
+
+    /** default memory ceiling of the shared cache (256 segments, 2^28 numbers) */
+    public static final long DEFAULT_MAX_BYTES = 256L * SEGMENT_BYTES;
+
+    private static final int NO_SEGMENTS = (int) ((Integer.MAX_VALUE + 1L) / SEGMENT_SIZE);
+
+    /** odd primes up to sqrt(Integer.MAX_VALUE), enough to sieve any segment */
+    private static final int[] BASE_PRIMES = basePrimes((int) Math.sqrt(Integer.MAX_VALUE));
+
+    /**
+     the cache shared by the whole process, its ceiling set with -Dprimerange.cache.maxBytes
+     (DEFAULT_MAX_BYTES when not set)
+     */
+    public static final PrimeCache SHARED =
+            new PrimeCache(Long.getLong("primerange.cache.maxBytes", DEFAULT_MAX_BYTES));
+
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(NO_SEGMENTS);
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong segmentsSieved = new AtomicLong();
+
+    /** logical clock, advanced each time a segment is published or read with a stale stamp */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final long maxBytes;
+
+    /**
+     A segment of the cache, pending while bits is null
+     */
+    private static final class Segment {
+
+        final ByteBuffer bits;
+
+        volatile long lastAccess;
+
+        Segment(ByteBuffer bits, long lastAccess) {
+            this.bits = bits;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     @param maxBytes the memory ceiling for the off-heap bitmaps, at least SEGMENT_BYTES
+     */
+    public PrimeCache(long maxBytes) {
+
+        if (maxBytes < SEGMENT_BYTES) {
+            throw new IllegalArgumentException("maxBytes must be at least " + SEGMENT_BYTES);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     Primality test backed by the sieved segments
+     @param numberTested
+     @return true or false
+     */
+    public boolean isPrime(int numberTested) {
+
+        long n = Math.abs((long) numberTested);
+
+        if (n == 2) {
+            return true;
+        }
+        else if (n % 2 == 0 || n > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        int index = (int) (n / SEGMENT_SIZE);
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            segment = load(index);
+        }
+        if (segment == null || segment.bits == null) {
+            /* being sieved by another thread or no room left */
+            return PrimeRange.isPrimeV2(n);
+        }
+
+        /* a stale stamp moves past every published segment, later reads leave it alone */
+        if (segment.lastAccess != clock.get()) {
+            segment.lastAccess = clock.incrementAndGet();
+        }
+
+        int bit = (int) (n % SEGMENT_SIZE) >>> 1;
+        return (segment.bits.get(bit >>> 3) & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     @return the off-heap bytes reserved by the published segments, not counting evicted
+     bitmaps the garbage collector has not freed yet
+     */
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     @return the memory ceiling of the cache
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     @return the number of segments sieved since the cache was created
+     */
+    public long segmentsSieved() {
+        return segmentsSieved.get();
+    }
+
+    /**
+     Claim a segment with a pending marker, sieve it and publish it. Only the thread whose
+     CAS installs the marker sieves the segment.
+     @param index the index of the segment
+     @return the segment found or published, or null if it could not be loaded
+     */
+    private Segment load(int index) {
+
+        Segment pending = new Segment(null, 0);
+        if (!segments.compareAndSet(index, null, pending)) {
+            return segments.get(index);
+        }
+
+        if (!reserve()) {
+            segments.compareAndSet(index, pending, null);
+            return null;
+        }
+
+        Segment ready;
+        try {
+            ready = new Segment(sieve((long) index * SEGMENT_SIZE), clock.incrementAndGet());
+        }
+        catch (RuntimeException | Error e) {
+            usedBytes.addAndGet(-SEGMENT_BYTES);
+            segments.compareAndSet(index, pending, null);
+            throw e;
+        }
+
+        segmentsSieved.incrementAndGet();
+        segments.compareAndSet(index, pending, ready);
+        return ready;
+    }
+
+    /**
+     Reserve the memory for a new segment, evicting cold segments while above the ceiling
+     @return true if the memory has been reserved
+     */
+    private boolean reserve() {
+
+        while (true) {
+            long used = usedBytes.get();
+            if (used + SEGMENT_BYTES <= maxBytes) {
+                if (usedBytes.compareAndSet(used, used + SEGMENT_BYTES)) {
+                    return true;
+                }
+            }
+            else if (!evictColdest()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     Evict the published segment with the oldest access. Readers still holding it keep using
+     it until they drop the reference, the off-heap memory being released by the collector.
+     @return true if a segment has been evicted
+     */
+    private boolean evictColdest() {
+
+        while (true) {
+            int coldest = -1;
+            Segment victim = null;
+            for (int i = 0; i < NO_SEGMENTS; ++i) {
+                Segment segment = segments.get(i);
+                if (segment != null && segment.bits != null
+                        && (victim == null || segment.lastAccess < victim.lastAccess)) {
+                    coldest = i;
+                    victim = segment;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            if (segments.compareAndSet(coldest, victim, null)) {
+                usedBytes.addAndGet(-SEGMENT_BYTES);
+                return true;
+            }
+        }
+    }
+
+    /**
+     Sieve of Eratosthenes over the odd numbers of [low, low + SEGMENT_SIZE)
+     @param low the first number of the segment, a multiple of SEGMENT_SIZE
+     @return the off-heap bitmap with a bit set for every odd prime
+     */
+    private static ByteBuffer sieve(long low) {
+
+        ByteBuffer bits = ByteBuffer.allocateDirect(SEGMENT_BYTES);
+        while (bits.hasRemaining()) {
+            bits.putLong(-1L);
+        }
+
+        long high = low + SEGMENT_SIZE;
+        if (low == 0) {
+            bits.put(0, (byte) (bits.get(0) & ~1));     /* 1 is not prime */
+        }
+
+        for (int p : BASE_PRIMES) {
+            if ((long) p * p >= high) {
+                break;
+            }
+            long multiple = Math.max((long) p * p, (low + p - 1) / p * p);
+            if (multiple % 2 == 0) {
+                multiple += p;
+            }
+            for (; multiple < high; multiple += 2 * p) {
+                int bit = (int) (multiple - low) >>> 1;
+                bits.put(bit >>> 3, (byte) (bits.get(bit >>> 3) & ~(1 << (bit & 7))));
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     @param limit the largest candidate
+     @return the odd primes up to limit
+     */
+    private static int[] basePrimes(int limit) {
+
+        boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 3; i <= limit; i += 2) {
+            if (!composite[i]) {
+                ++count;
+                for (long j = (long) i * i; j <= limit; j += 2 * i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+
+        int[] primes = new int[count];
+        count = 0;
+        for (int i = 3; i <= limit; i += 2) {
+            if (!composite[i]) {
+                primes[count++] = i;
+            }
+        }
+        return primes;
+    }
+}
@@ -15,7 +15,7 @@ public class PrimeRange {
     public static int noIterations = 5;
 
     public enum Strategy {
-        DETERMINISTIC, NON_DETERMINISTIC
+        DETERMINISTIC, NON_DETERMINISTIC, CACHED
     }
 
     /**
@@ -23,7 +23,7 @@ public class PrimeRange {
      @return the biggest prime number or INVALID_PRIME if no prime has been found
      @param limitA          the first limit for searching for the prime
      @param limitB          the second limit for searching for the prime
-     @param currentStrategy the strategy employed (DETERMINISTIC/NON_DETERMINISTIC)
+     @param currentStrategy the strategy employed (DETERMINISTIC/NON_DETERMINISTIC/CACHED)
      */
     public static int extractLargestPrime(int limitA, int limitB, Strategy currentStrategy) {
 
@@ -49,6 +49,12 @@ public class PrimeRange {
                     }
                 }
                 break;
+                case CACHED: {         /* Shared sieve */
+                    if (isPrimeV5(i)) {
+                        return i;
+                    }
+                }
+                break;
             }
         }
 
@@ -60,7 +66,7 @@ public class PrimeRange {
      @return the smallest prime number or INVALID_PRIME if no prime has been found
      @param limitA          the first limit for searching for the prime
      @param limitB          the second limit for searching for the prime
-     @param currentStrategy the strategy employed (DETERMINISTIC/NON_DETERMINISTIC)
+     @param currentStrategy the strategy employed (DETERMINISTIC/NON_DETERMINISTIC/CACHED)
      */
     public static int extractSmallestPrime(int limitA, int limitB, Strategy currentStrategy) {
 
@@ -87,6 +93,12 @@ public class PrimeRange {
                     }
                 }
                 break;
+                case CACHED: {         /* Shared sieve */
+                    if (isPrimeV5(i)) {
+                        return i;
+                    }
+                }
+                break;
             }
         }
 
@@ -230,6 +242,15 @@ public class PrimeRange {
         return true;
     }
 
+    /**
+     Primality test backed by the process-wide sieve cache
+     @param numberTested
+     @return true or false
+     */
+    protected static boolean isPrimeV5(int numberTested) {
+        return PrimeCache.SHARED.isPrime(numberTested);
+    }
+
     /**
      Helper method that computes (a ^ b) % c in O(log b) time
      @param a
@@ -0,0 +1,146 @@
+package primerange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ Class with tests for the PrimeCache class */
+public class PrimeCacheTest {
+
+    private static final int NO_THREADS = 8;
+
+    /**
+     Special cases and segment boundaries against isPrimeV2
+     @throws Exception
+     */
+    @org.junit.Test
+    public void specialCases() throws Exception {
+
+        PrimeCache cache = new PrimeCache(PrimeCache.SEGMENT_BYTES);
+
+        assertFalse(cache.isPrime(0));
+        assertFalse(cache.isPrime(1));
+        assertFalse(cache.isPrime(-1));
+        assertTrue(cache.isPrime(2));
+        assertTrue(cache.isPrime(-2));
+        assertTrue(cache.isPrime(3));
+        assertFalse(cache.isPrime(9));
+        assertTrue(cache.isPrime(2147483647));
+        assertTrue(cache.isPrime(-2147483647));
+        assertFalse(cache.isPrime(-2147483648));
+
+        // first and last numbers of a few segments
+        int[] segments = { 0, 1, 2, 47, 2047 };
+        for (int segment : segments) {
+            long low = (long) segment * PrimeCache.SEGMENT_SIZE;
+            for (long n = Math.max(0, low - 100); n < low + 100 && n <= Integer.MAX_VALUE; ++n) {
+                assertEquals("isPrime(" + n + ")", PrimeRange.isPrimeV2(n), cache.isPrime((int) n));
+            }
+        }
+    }
+
+    /**
+     The memory ceiling is never exceeded and the coldest segment is the one evicted
+     @throws Exception
+     */
+    @org.junit.Test
+    public void memoryCeiling() throws Exception {
+
+        PrimeCache cache = new PrimeCache(2 * PrimeCache.SEGMENT_BYTES);
+        int first = 3;
+        int second = PrimeCache.SEGMENT_SIZE + 3;
+        int third = 2 * PrimeCache.SEGMENT_SIZE + 3;
+
+        cache.isPrime(first);
+        cache.isPrime(second);
+        assertEquals(2, cache.segmentsSieved());
+        assertEquals(2 * PrimeCache.SEGMENT_BYTES, cache.usedBytes());
+
+        // a third segment evicts the first one, the coldest
+        cache.isPrime(third);
+        assertEquals(3, cache.segmentsSieved());
+        assertEquals(2 * PrimeCache.SEGMENT_BYTES, cache.usedBytes());
+        cache.isPrime(second);
+        assertEquals(3, cache.segmentsSieved());
+
+        // reading the second segment made the third one the coldest
+        cache.isPrime(first);
+        assertEquals(4, cache.segmentsSieved());
+        cache.isPrime(second);
+        assertEquals(4, cache.segmentsSieved());
+
+        // an older segment read after the publish of a newer one is not the one evicted
+        cache = new PrimeCache(2 * PrimeCache.SEGMENT_BYTES);
+        cache.isPrime(first);
+        cache.isPrime(second);
+        for (int k = 0; k < 1000; ++k) {
+            cache.isPrime(first);
+        }
+        cache.isPrime(third);
+        assertEquals(3, cache.segmentsSieved());
+        cache.isPrime(first);
+        assertEquals(3, cache.segmentsSieved());
+
+        // results stay correct while segments keep being evicted
+        for (int segment = 0; segment < 16; ++segment) {
+            int n = segment * PrimeCache.SEGMENT_SIZE + 7919;
+            assertEquals(PrimeRange.isPrimeV2(n), cache.isPrime(n));
+            assertTrue(cache.usedBytes() <= cache.maxBytes());
+        }
+    }
+
+    /**
+     Threads scanning the same range concurrently sieve every segment once
+     @throws Exception
+     */
+    @org.junit.Test
+    public void concurrentReaders() throws Exception {
+
+        PrimeCache cache = new PrimeCache(PrimeCache.DEFAULT_MAX_BYTES);
+        int noSegments = 4;
+        int limit = noSegments * PrimeCache.SEGMENT_SIZE;
+
+        ExecutorService executor = Executors.newFixedThreadPool(NO_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> counts = new ArrayList<>();
+        for (int t = 0; t < NO_THREADS; ++t) {
+            counts.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int n = 0; n < limit; ++n) {
+                    if (cache.isPrime(n)) {
+                        ++count;
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+
+        // pi(2^22) = 295947
+        for (Future<Integer> count : counts) {
+            assertEquals(295947, (int) count.get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(noSegments, cache.segmentsSieved());
+        assertEquals(noSegments * PrimeCache.SEGMENT_BYTES, cache.usedBytes());
+    }
+
+    /**
+     A ceiling below a single segment is rejected
+     @throws Exception
+     */
+    @org.junit.Test(expected = IllegalArgumentException.class)
+    public void ceilingTooSmall() throws Exception {
+        new PrimeCache(PrimeCache.SEGMENT_BYTES - 1);
+    }
+}
@@ -0,0 +1,489 @@
+package primerange;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ Differential tests for the PrimeRange class. Every primality test and both extract methods
+ are cross-checked against a reference sieve of Eratosthenes, exhaustively over [0, 2^24]
+ and over random windows up to 2^31 - 1. The blocks are checked in parallel and the
+ throughput reached by each run is printed. The nondeterministic tests (Miller-Rabin, Fermat)
+ are one-sided: a prime must always be accepted, while a composite may be accepted only within
+ the error bound of the algorithm for the current number of iterations.
+ */
+public class PrimeRangeDifferentialTest {
+
+    /** upper bound of the exhaustively checked range */
+    private static final int EXHAUSTIVE_LIMIT = 1 << 24;
+
+    /** size of a block of numbers checked by one task */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** number of random windows sampled above EXHAUSTIVE_LIMIT */
+    private static final int SAMPLED_WINDOWS = 16;
+
+    /** size of a random window sampled above EXHAUSTIVE_LIMIT */
+    private static final int WINDOW_SIZE = 1 << 14;
+
+    /** number of random subranges handed to the extract methods in each block */
+    private static final int SUBRANGES_PER_BLOCK = 16;
+
+    /** number of times each known pseudoprime is handed to a nondeterministic test */
+    private static final int PSEUDOPRIME_TRIALS = 200;
+
+    /**
+     seed for the random windows and subranges, printed so that a failing range can be replayed
+     with -Dprimerange.seed. Miller-Rabin and Fermat draw their bases from their own unseeded
+     Random, so their false positives are not replayed.
+     */
+    private static final long SEED = Long.getLong("primerange.seed", System.nanoTime());
+
+    /** Carmichael numbers - composites that pass the Fermat test for every coprime base */
+    private static final int[] CARMICHAEL_NUMBERS = {
+            561, 1105, 1729, 2465, 2821, 6601, 8911, 10585, 15841, 29341, 41041, 46657, 52633,
+            62745, 63973, 75361, 101101, 115921, 126217, 162401, 172081, 188461, 252601, 278545,
+            294409, 314821, 334153, 340561, 399001, 410041, 449065, 488881, 512461, 1152271
+    };
+
+    /** Fermat pseudoprimes to base 2 which are not Carmichael numbers */
+    private static final int[] FERMAT_PSEUDOPRIMES = {
+            341, 645, 1387, 1905, 2047, 2701, 3277, 4033, 4369, 4371, 4681, 5461, 7957, 8321
+    };
+
+    /** strong pseudoprimes to base 2 - composites that pass a Miller-Rabin round with a = 2 */
+    private static final int[] STRONG_PSEUDOPRIMES = {
+            2047, 3277, 4033, 4681, 8321, 15841, 29341, 42799, 49141, 52633, 65281, 74665,
+            80581, 85489, 88357, 90751
+    };
+
+    /** reference primality for [0, EXHAUSTIVE_LIMIT], also the source of the base primes for the windows */
+    private static final Sieve REFERENCE = new Sieve(0, EXHAUSTIVE_LIMIT, null);
+
+    /**
+     Exhaustive cross-check of isPrimeV1-V5 over [0, 2^24] and of the negated range
+     @throws Exception
+     */
+    @org.junit.Test
+    public void exhaustivePrimalityTests() throws Exception {
+
+        Tally tally = new Tally();
+        long start = System.nanoTime();
+
+        IntStream.range(0, EXHAUSTIVE_LIMIT / BLOCK_SIZE + 1).parallel().forEach(block -> {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE - 1, EXHAUSTIVE_LIMIT);
+            for (int i = from; i <= to; ++i) {
+                checkPrimality(i, REFERENCE.isPrime(i), tally);
+                // the tests work on the absolute value of their argument
+                if (i > 0 && i % 7 == 0) {
+                    checkPrimality(-i, REFERENCE.isPrime(i), tally);
+                }
+            }
+        });
+
+        report("exhaustive isPrimeV1-V5 [0, 2^24]", tally, start);
+        tally.assertWithinErrorBounds();
+    }
+
+    /**
+     Cross-check of isPrimeV1-V5 over random windows between 2^24 and 2^31 - 1, including
+     the window that ends at Integer.MAX_VALUE
+     @throws Exception
+     */
+    @org.junit.Test
+    public void sampledPrimalityTests() throws Exception {
+
+        Tally tally = new Tally();
+        int[] windows = sampleWindows();
+        long start = System.nanoTime();
+
+        IntStream.range(0, windows.length).parallel().forEach(w -> {
+            int from = windows[w];
+            int to = from + WINDOW_SIZE - 1;
+            Sieve window = new Sieve(from, to, REFERENCE);
+            for (int i = from; i <= to && i >= from; ++i) {
+                checkPrimality(i, window.isPrime(i), tally);
+            }
+        });
+
+        report("sampled isPrimeV1-V5 (2^24, 2^31)", tally, start);
+        tally.assertWithinErrorBounds();
+    }
+
+    /**
+     Cross-check of extractSmallestPrime and extractLargestPrime, with every strategy, over
+     every block of [0, 2^24], random subranges of each block and their negated counterparts
+     @throws Exception
+     */
+    @org.junit.Test
+    public void exhaustiveExtractPrime() throws Exception {
+
+        Tally tally = new Tally();
+        long start = System.nanoTime();
+
+        IntStream.range(0, EXHAUSTIVE_LIMIT / BLOCK_SIZE).parallel().forEach(block -> {
+            int from = block * BLOCK_SIZE;
+            int to = from + BLOCK_SIZE - 1;
+            Random rand = new Random(SEED + block);
+            checkExtract(from, to, REFERENCE, tally);
+            for (int k = 0; k < SUBRANGES_PER_BLOCK; ++k) {
+                int a = from + rand.nextInt(BLOCK_SIZE);
+                int b = Math.min(to, a + rand.nextInt(256));
+                checkExtract(a, b, REFERENCE, tally);
+                checkExtract(b, a, REFERENCE, tally);
+                checkExtract(-a, -b, REFERENCE, tally);
+            }
+        });
+
+        report("exhaustive extract [0, 2^24]", tally, start);
+        tally.assertWithinErrorBounds();
+    }
+
+    /**
+     Cross-check of extractSmallestPrime and extractLargestPrime, with every strategy, over
+     random windows between 2^24 and 2^31 - 1
+     @throws Exception
+     */
+    @org.junit.Test
+    public void sampledExtractPrime() throws Exception {
+
+        Tally tally = new Tally();
+        int[] windows = sampleWindows();
+        long start = System.nanoTime();
+
+        IntStream.range(0, windows.length).parallel().forEach(w -> {
+            int from = windows[w];
+            int to = from + WINDOW_SIZE - 1;
+            Sieve window = new Sieve(from, to, REFERENCE);
+            Random rand = new Random(SEED + w);
+            checkExtract(from, to, window, tally);
+            for (int k = 0; k < SUBRANGES_PER_BLOCK; ++k) {
+                int a = from + rand.nextInt(WINDOW_SIZE);
+                int b = Math.min(to, a + rand.nextInt(256));
+                checkExtract(a, b, window, tally);
+                checkExtract(-b, -a, window, tally);
+            }
+        });
+
+        report("sampled extract (2^24, 2^31)", tally, start);
+        tally.assertWithinErrorBounds();
+    }
+
+    /**
+     Known Carmichael numbers and pseudoprimes against every primality test
+     @throws Exception
+     */
+    @org.junit.Test
+    public void knownPseudoprimes() throws Exception {
+
+        // make sure the tables themselves are right before relying on them
+        for (int n : CARMICHAEL_NUMBERS) {
+            assertTrue(n + " is not a Carmichael number", isCarmichael(n));
+        }
+        for (int n : FERMAT_PSEUDOPRIMES) {
+            assertFalse(n + " is prime", REFERENCE.isPrime(n));
+            assertFalse(n + " is a Carmichael number", isCarmichael(n));
+            assertEquals(n + " is not a Fermat pseudoprime to base 2", 1, PrimeRange.modularExponentiation(2, n - 1, n));
+        }
+        for (int n : STRONG_PSEUDOPRIMES) {
+            assertFalse(n + " is prime", REFERENCE.isPrime(n));
+            assertTrue(n + " is not a strong pseudoprime to base 2", isStrongProbablePrime(n, 2));
+        }
+
+        Tally tally = new Tally();
+        long start = System.nanoTime();
+
+        int[][] tables = { CARMICHAEL_NUMBERS, FERMAT_PSEUDOPRIMES, STRONG_PSEUDOPRIMES };
+        for (int[] table : tables) {
+            Arrays.stream(table).parallel().forEach(n -> {
+                for (int k = 0; k < PSEUDOPRIME_TRIALS; ++k) {
+                    checkPrimality(n, false, tally);
+                }
+            });
+        }
+
+        // Miller-Rabin is not fooled by any class of composites
+        assertTrue("Miller-Rabin accepted " + tally.millerRabin.falsePositives + " known pseudoprimes",
+                tally.millerRabin.withinErrorBound(4));
+
+        // Fermat is only bounded on composites which have at least one coprime witness
+        Errors fermat = new Errors("Fermat");
+        Arrays.stream(FERMAT_PSEUDOPRIMES).parallel().forEach(n -> {
+            for (int k = 0; k < PSEUDOPRIME_TRIALS; ++k) {
+                fermat.record(n, false, PrimeRange.isPrimeV4(n));
+            }
+        });
+        assertTrue(fermat + " above the error bound", fermat.withinErrorBound(2));
+
+        report("known pseudoprimes", tally, start);
+    }
+
+    /**
+     Check every primality test on a single number against the expected result
+     @param n      the number tested
+     @param prime  the reference result for n
+     @param tally  the counters updated with the result
+     */
+    private static void checkPrimality(int n, boolean prime, Tally tally) {
+
+        assertEquals("isPrimeV1(" + n + ")", prime, PrimeRange.isPrimeV1(n));
+        assertEquals("isPrimeV2(" + n + ")", prime, PrimeRange.isPrimeV2(n));
+        assertEquals("isPrimeV5(" + n + ")", prime, PrimeRange.isPrimeV5(n));
+        tally.millerRabin.record(n, prime, PrimeRange.isPrimeV3(n));
+        tally.fermat.record(n, prime, PrimeRange.isPrimeV4(n));
+        tally.checked.add(5);
+    }
+
+    /**
+     Check both extract methods with every strategy on a range against the reference
+     @param limitA the first limit of the range
+     @param limitB the second limit of the range
+     @param sieve  the reference covering the absolute values of the range
+     @param tally  the counters updated with the result
+     */
+    private static void checkExtract(int limitA, int limitB, Sieve sieve, Tally tally) {
+
+        int low = Math.min(limitA, limitB);
+        int high = Math.max(limitA, limitB);
+
+        int smallest = PrimeRange.INVALID_PRIME;
+        for (int i = low; i <= high; ++i) {
+            if (sieve.isPrime(Math.abs(i))) {
+                smallest = i;
+                break;
+            }
+        }
+        int largest = PrimeRange.INVALID_PRIME;
+        for (int i = high; i >= low; --i) {
+            if (sieve.isPrime(Math.abs(i))) {
+                largest = i;
+                break;
+            }
+        }
+
+        String range = "(" + limitA + ", " + limitB + ")";
+        assertEquals("extractSmallestPrime DETERMINISTIC" + range, smallest,
+                PrimeRange.extractSmallestPrime(limitA, limitB, PrimeRange.Strategy.DETERMINISTIC));
+        assertEquals("extractLargestPrime DETERMINISTIC" + range, largest,
+                PrimeRange.extractLargestPrime(limitA, limitB, PrimeRange.Strategy.DETERMINISTIC));
+        assertEquals("extractSmallestPrime CACHED" + range, smallest,
+                PrimeRange.extractSmallestPrime(limitA, limitB, PrimeRange.Strategy.CACHED));
+        assertEquals("extractLargestPrime CACHED" + range, largest,
+                PrimeRange.extractLargestPrime(limitA, limitB, PrimeRange.Strategy.CACHED));
+
+        // Miller-Rabin never rejects a prime, so the scan may stop early on a composite but never overshoot
+        int found = PrimeRange.extractSmallestPrime(limitA, limitB, PrimeRange.Strategy.NON_DETERMINISTIC);
+        if (found != smallest) {
+            assertTrue("extractSmallestPrime NON_DETERMINISTIC" + range + " overshot with " + found,
+                    found != PrimeRange.INVALID_PRIME && found >= low && (smallest == PrimeRange.INVALID_PRIME || found < smallest));
+            tally.millerRabin.falsePositives.increment();
+        }
+        found = PrimeRange.extractLargestPrime(limitA, limitB, PrimeRange.Strategy.NON_DETERMINISTIC);
+        if (found != largest) {
+            assertTrue("extractLargestPrime NON_DETERMINISTIC" + range + " overshot with " + found,
+                    found != PrimeRange.INVALID_PRIME && found <= high && found > largest);
+            tally.millerRabin.falsePositives.increment();
+        }
+        long span = (long) high - low + 1;
+        tally.millerRabin.composites.add(smallest == PrimeRange.INVALID_PRIME ? span : (long) smallest - low);
+        tally.millerRabin.composites.add(largest == PrimeRange.INVALID_PRIME ? span : (long) high - largest);
+        tally.checked.add(6);
+    }
+
+    /**
+     Random window starts between EXHAUSTIVE_LIMIT and Integer.MAX_VALUE, the last one ending
+     exactly at Integer.MAX_VALUE
+     @return the first number of each window
+     */
+    private static int[] sampleWindows() {
+
+        Random rand = new Random(SEED);
+        int[] windows = new int[SAMPLED_WINDOWS];
+        int span = Integer.MAX_VALUE - WINDOW_SIZE - EXHAUSTIVE_LIMIT;
+        for (int w = 0; w < SAMPLED_WINDOWS - 1; ++w) {
+            windows[w] = EXHAUSTIVE_LIMIT + 1 + rand.nextInt(span);
+        }
+        windows[SAMPLED_WINDOWS - 1] = Integer.MAX_VALUE - WINDOW_SIZE + 1;
+        return windows;
+    }
+
+    /**
+     Korselt's criterion - n is a Carmichael number iff it is composite, square-free and
+     p - 1 divides n - 1 for every prime factor p
+     @param n the number tested
+     @return true or false
+     */
+    private static boolean isCarmichael(int n) {
+
+        if (n < 3 || REFERENCE.isPrime(n)) {
+            return false;
+        }
+        int rest = n;
+        for (int p = 2; (long) p * p <= rest; ++p) {
+            if (rest % p == 0) {
+                rest /= p;
+                if (rest % p == 0 || (n - 1) % (p - 1) != 0) {
+                    return false;
+                }
+            }
+        }
+        return rest == 1 || (n - 1) % (rest - 1) == 0;
+    }
+
+    /**
+     A single Miller-Rabin round with a fixed base
+     @param n the odd number tested
+     @param a the base
+     @return true if n is a strong probable prime to base a
+     */
+    private static boolean isStrongProbablePrime(int n, int a) {
+
+        int d = n - 1;
+        int r = 0;
+        while (d % 2 == 0) {
+            d /= 2;
+            ++r;
+        }
+        long x = PrimeRange.modularExponentiation(a, d, n);
+        if (x == 1 || x == n - 1) {
+            return true;
+        }
+        for (int i = 1; i < r; ++i) {
+            x = PrimeRange.modularMultiplication(x, x, n);
+            if (x == n - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     Print the throughput reached by a run
+     @param name  the name of the run
+     @param tally the counters of the run
+     @param start the System.nanoTime() at the start of the run
+     */
+    private static void report(String name, Tally tally, long start) {
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // the parallel streams run on the common pool, the calling thread taking part as well
+        int threads = ForkJoinPool.getCommonPoolParallelism() + 1;
+        StringBuilder errors = new StringBuilder();
+        for (Errors counters : new Errors[] { tally.millerRabin, tally.fermat }) {
+            if (counters.composites.sum() > 0) {
+                errors.append(", ").append(counters);
+            }
+        }
+        System.out.printf("%s: %d checks in %.2f s (%.0f checks/s, %d threads, seed %d)%s%n",
+                name, tally.checked.sum(), seconds, tally.checked.sum() / seconds, threads, SEED, errors);
+    }
+
+    /**
+     Counters shared by the parallel tasks of a run
+     */
+    private static final class Tally {
+
+        final LongAdder checked = new LongAdder();
+        final Errors millerRabin = new Errors("Miller-Rabin");
+        final Errors fermat = new Errors("Fermat");
+
+        /**
+         Miller-Rabin errs on a composite with probability at most 4^-k and Fermat at most 2^-k
+         (for all but the Carmichael numbers, whose count below 2^31 is far below the margin)
+         */
+        void assertWithinErrorBounds() {
+            assertTrue(millerRabin + " above the error bound", millerRabin.withinErrorBound(4));
+            assertTrue(fermat + " above the error bound", fermat.withinErrorBound(2));
+        }
+    }
+
+    /**
+     Error counters of a nondeterministic primality test
+     */
+    private static final class Errors {
+
+        final String name;
+        final LongAdder composites = new LongAdder();
+        final LongAdder falsePositives = new LongAdder();
+
+        Errors(String name) {
+            this.name = name;
+        }
+
+        /**
+         Record a single answer of the test
+         @param n      the number tested
+         @param prime  the reference result for n
+         @param answer the answer of the test
+         */
+        void record(int n, boolean prime, boolean answer) {
+            if (prime) {
+                assertTrue(name + " rejected the prime " + n, answer);
+            }
+            else {
+                composites.increment();
+                if (answer) {
+                    falsePositives.increment();
+                }
+            }
+        }
+
+        /**
+         @param witnessRatio the inverse of the worst case probability of a single round to be fooled
+         @return true if the false positives are at most the expected count for the current noIterations
+         */
+        boolean withinErrorBound(int witnessRatio) {
+            double bound = composites.sum() * Math.pow(witnessRatio, -PrimeRange.noIterations);
+            return falsePositives.sum() <= Math.ceil(bound);
+        }
+
+        @Override
+        public String toString() {
+            return name + " false positives " + falsePositives.sum() + "/" + composites.sum();
+        }
+    }
+
+    /**
+     Sieve of Eratosthenes over [from, to], segmented over the base primes of another sieve
+     */
+    private static final class Sieve {
+
+        private final int from;
+        private final boolean[] composite;
+
+        /**
+         @param from  the first number covered
+         @param to    the last number covered
+         @param base  a sieve covering [0, sqrt(to)], or null to sieve from scratch
+         */
+        Sieve(int from, int to, Sieve base) {
+
+            this.from = from;
+            this.composite = new boolean[to - from + 1];
+
+            for (long n = from; n <= Math.min(to, 1); ++n) {
+                composite[(int) (n - from)] = true;
+            }
+
+            int limit = (int) Math.sqrt(to);
+            for (int p = 2; p <= limit; ++p) {
+                if (base == null ? composite[p - from] : !base.isPrime(p)) {
+                    continue;
+                }
+                long first = Math.max((long) p * p, ((from + (long) p - 1) / p) * p);
+                for (long m = first; m <= to; m += p) {
+                    composite[(int) (m - from)] = true;
+                }
+            }
+        }
+
+        boolean isPrime(long n) {
+            return !composite[(int) (n - from)];
+        }
+    }
+}